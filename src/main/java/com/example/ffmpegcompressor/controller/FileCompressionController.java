@@ -6,12 +6,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
@@ -20,11 +23,13 @@ import java.util.Map;
 
 @RestController
 @RequestMapping("/api/file")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = {FileCompressionController.STREAM_ID_HEADER, HttpHeaders.CONTENT_DISPOSITION})
 public class FileCompressionController {
 
     private static final Logger logger = LoggerFactory.getLogger(FileCompressionController.class);
 
+    static final String STREAM_ID_HEADER = "X-Compression-Id";
+
     @Autowired
     private FFmpegService ffmpegService;
 
@@ -37,34 +42,77 @@ public class FileCompressionController {
             @RequestParam(value = "maxHeight", required = false) Integer maxHeight) {
 
         try {
-            // Validate file
-            if (file.isEmpty()) {
-                return ResponseEntity.badRequest().body(createErrorResponse("File is empty"));
+            String validationError = validateRequest(file, compressionLevel);
+            if (validationError != null) {
+                return ResponseEntity.badRequest().body(createErrorResponse(validationError));
             }
 
-            // Only support video and image files now
-            String fileType = detectFileType(file.getContentType(), file.getOriginalFilename());
-            if ("unknown".equals(fileType) || "audio".equals(fileType)) {
-                return ResponseEntity.badRequest().body(createErrorResponse("Unsupported file type. Supported: video and image files only"));
-            }
+            CompressionResponse response = ffmpegService.compressFile(file, compressionLevel, outputFormat, maxWidth, maxHeight);
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("Compression failed: " + e.getMessage()));
+        }
+    }
 
-            // Validate compression level
-            if (!isValidCompressionLevel(compressionLevel)) {
-                return ResponseEntity.badRequest().body(createErrorResponse("Invalid compression level. Use: low, medium, or high"));
+    @PostMapping("/compress/stream")
+    public ResponseEntity<?> compressFileStream(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "compressionLevel", defaultValue = "medium") String compressionLevel,
+            @RequestParam(value = "outputFormat", required = false) String outputFormat,
+            @RequestParam(value = "maxWidth", required = false) Integer maxWidth,
+            @RequestParam(value = "maxHeight", required = false) Integer maxHeight) {
+
+        FFmpegService.StreamingCompression streaming = null;
+        try {
+            String validationError = validateRequest(file, compressionLevel);
+            if (validationError != null) {
+                return ResponseEntity.badRequest().body(createErrorResponse(validationError));
             }
 
+            String fileType = detectFileType(file.getContentType(), file.getOriginalFilename());
+            if ("image".equals(fileType) && "avif".equalsIgnoreCase(outputFormat)) {
+                return ResponseEntity.badRequest().body(createErrorResponse("AVIF output can't be streamed. Use /compress instead"));
+            }
 
+            streaming = ffmpegService.startStreamingCompression(
+                    file, compressionLevel, outputFormat, maxWidth, maxHeight);
 
-            CompressionResponse response = ffmpegService.compressFile(file, compressionLevel, outputFormat, maxWidth, maxHeight);
+            // Once the request is done, make sure FFmpeg isn't left behind even if the body was never written
+            FFmpegService.StreamingCompression started = streaming;
+            RequestContextHolder.currentRequestAttributes().registerDestructionCallback(
+                    STREAM_ID_HEADER + "." + started.getId(), () -> closeQuietly(started),
+                    RequestAttributes.SCOPE_REQUEST);
 
-            return ResponseEntity.ok(response);
+            // Body is written while FFmpeg encodes; statistics are available from /stats/{id} afterwards
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + streaming.getFileName() + "\"")
+                    .header(STREAM_ID_HEADER, streaming.getId())
+                    .contentType(MediaType.parseMediaType(streaming.getContentType()))
+                    .body(new InputStreamResource(streaming.getInputStream()));
 
         } catch (Exception e) {
+            if (streaming != null) {
+                closeQuietly(streaming);
+            }
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(createErrorResponse("Compression failed: " + e.getMessage()));
         }
     }
 
+    @GetMapping("/stats/{id}")
+    public ResponseEntity<?> getStreamStatistics(@PathVariable String id) {
+        CompressionResponse statistics = ffmpegService.getStreamStatistics(id);
+
+        if (statistics == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        return ResponseEntity.ok(statistics);
+    }
+
     @GetMapping("/download/{filename}")
     public ResponseEntity<Resource> downloadCompressedFile(@PathVariable String filename) {
         try {
@@ -118,6 +166,34 @@ public class FileCompressionController {
         return ResponseEntity.ok(status);
     }
 
+    private void closeQuietly(FFmpegService.StreamingCompression streaming) {
+        try {
+            streaming.close();
+        } catch (Exception e) {
+            logger.warn("Error closing streaming compression: {}", streaming.getId(), e);
+        }
+    }
+
+    private String validateRequest(MultipartFile file, String compressionLevel) {
+        // Validate file
+        if (file.isEmpty()) {
+            return "File is empty";
+        }
+
+        // Only support video and image files now
+        String fileType = detectFileType(file.getContentType(), file.getOriginalFilename());
+        if ("unknown".equals(fileType) || "audio".equals(fileType)) {
+            return "Unsupported file type. Supported: video and image files only";
+        }
+
+        // Validate compression level
+        if (!isValidCompressionLevel(compressionLevel)) {
+            return "Invalid compression level. Use: low, medium, or high";
+        }
+
+        return null;
+    }
+
     private boolean isValidCompressionLevel(String level) {
         return level != null && (level.equalsIgnoreCase("low") ||
                 level.equalsIgnoreCase("medium") ||
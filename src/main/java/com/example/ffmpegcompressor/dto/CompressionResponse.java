@@ -116,6 +116,54 @@ public class CompressionResponse {
         this.originalFileName = originalFileName;
     }
 
+    public String getCompressedFileName() {
+        return compressedFileName;
+    }
+
+    public void setCompressedFileName(String compressedFileName) {
+        this.compressedFileName = compressedFileName;
+    }
+
+    public long getOriginalSize() {
+        return originalSize;
+    }
+
+    public void setOriginalSize(long originalSize) {
+        this.originalSize = originalSize;
+    }
+
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    public void setCompressedSize(long compressedSize) {
+        this.compressedSize = compressedSize;
+    }
+
+    public double getCompressionRatio() {
+        return compressionRatio;
+    }
+
+    public void setCompressionRatio(double compressionRatio) {
+        this.compressionRatio = compressionRatio;
+    }
+
+    public double getSpaceSavedPercentage() {
+        return spaceSavedPercentage;
+    }
+
+    public void setSpaceSavedPercentage(double spaceSavedPercentage) {
+        this.spaceSavedPercentage = spaceSavedPercentage;
+    }
+
+    public long getProcessingTimeMs() {
+        return processingTimeMs;
+    }
+
+    public void setProcessingTimeMs(long processingTimeMs) {
+        this.processingTimeMs = processingTimeMs;
+    }
+
     public String getOutputPath() {
         return outputPath;
     }
@@ -7,13 +7,21 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
 public class FFmpegService {
@@ -29,6 +37,49 @@ public class FFmpegService {
     @Value("${app.ffmpeg.path:ffmpeg}")
     private String ffmpegPath;
 
+    // How long an image job waits for compatible jobs to share an FFmpeg process. On by default,
+    // so a lone image pays the whole window; a batched one also waits for the rest of its batch
+    // to encode, plus its own retry if the batch fails. Off when window-ms is 0 or max-size <= 1.
+    @Value("${app.ffmpeg.image-batch.window-ms:20}")
+    private long imageBatchWindowMs;
+
+    @Value("${app.ffmpeg.image-batch.max-size:8}")
+    private int imageBatchMaxSize;
+
+    // Upper bound on waiting for a batch, so a lost batch can't hang a request thread forever
+    private static final long IMAGE_BATCH_TIMEOUT_MINUTES = 10;
+
+    private ImageBatcher imageBatcher;
+
+    // Statistics of finished streaming compressions, kept for the sidecar endpoint.
+    // Bounded so clients that never ask for them don't grow the map forever.
+    private static final int MAX_STREAM_STATISTICS = 1000;
+
+    private final Map<String, CompressionResponse> streamStatistics = Collections.synchronizedMap(
+            new LinkedHashMap<String, CompressionResponse>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CompressionResponse> eldest) {
+                    return size() > MAX_STREAM_STATISTICS;
+                }
+            });
+
+    @PostConstruct
+    void initImageBatcher() {
+        if (imageBatchWindowMs > 0 && imageBatchMaxSize > 1) {
+            imageBatcher = new ImageBatcher(imageBatchWindowMs, imageBatchMaxSize, this::runImageBatch);
+            logger.info("Image batching enabled - window: {} ms, max batch size: {}", imageBatchWindowMs, imageBatchMaxSize);
+        } else {
+            logger.info("Image batching disabled - window: {} ms, max batch size: {}", imageBatchWindowMs, imageBatchMaxSize);
+        }
+    }
+
+    @PreDestroy
+    void shutdownImageBatcher() {
+        if (imageBatcher != null) {
+            imageBatcher.shutdown();
+        }
+    }
+
     public CompressionResponse compressFile(MultipartFile file, String compressionLevel,
                                             String outputFormat, Integer maxWidth, Integer maxHeight) throws Exception {
         long startTime = System.currentTimeMillis();
@@ -63,29 +114,29 @@ public class FFmpegService {
             String fileType = detectFileType(contentType, originalFileName);
             logger.info("Detected file type: {}", fileType);
 
-            List<String> command = buildFFmpegCommand(inputPath.toString(), outputPath.toString(),
-                    compressionLevel, fileType, maxWidth, maxHeight);
-
-            // Execute FFmpeg command
-            ProcessBuilder processBuilder = new ProcessBuilder(command);
-            processBuilder.redirectErrorStream(true);
-            Process process = processBuilder.start();
-
-            // Read output
-            StringBuilder output = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line).append("\n");
+            if ("image".equals(fileType) && imageBatcher != null) {
+                ImageBatcher.ImageJob job = new ImageBatcher.ImageJob(inputPath, outputPath, compressionLevel,
+                        outputExtension.substring(1), maxWidth, maxHeight);
+                boolean batched;
+                try {
+                    batched = imageBatcher.submit(job).get(IMAGE_BATCH_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                } catch (TimeoutException e) {
+                    throw new RuntimeException("Timed out waiting for image batch: " + inputPath, e);
                 }
+                // Not part of a successful batch: compress it on this request thread like any other file
+                if (!batched) {
+                    runFFmpeg(buildFFmpegCommand(inputPath.toString(), outputPath.toString(),
+                            compressionLevel, fileType, maxWidth, maxHeight));
+                }
+            } else {
+                List<String> command = buildFFmpegCommand(inputPath.toString(), outputPath.toString(),
+                        compressionLevel, fileType, maxWidth, maxHeight);
+                runFFmpeg(command);
             }
 
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                throw new RuntimeException("File compression failed: " + output.toString());
-            }
-
-
             if (!Files.exists(outputPath)) {
                 throw new RuntimeException("FFmpeg completed but output file was not created: " + outputPath);
             }
@@ -132,6 +183,144 @@ public class FFmpegService {
         }
     }
 
+    /**
+     * Starts compressing the file with FFmpeg writing to stdout instead of an output file.
+     * The returned stream yields the compressed bytes as they are produced; statistics are
+     * recorded once it has been fully read and can be fetched with {@link #getStreamStatistics}.
+     */
+    public StreamingCompression startStreamingCompression(MultipartFile file, String compressionLevel,
+                                                          String outputFormat, Integer maxWidth, Integer maxHeight) throws Exception {
+        long startTime = System.currentTimeMillis();
+        createDirectories();
+
+        String originalFileName = file.getOriginalFilename();
+        String uniqueId = UUID.randomUUID().toString();
+        String inputFileName = "input_" + uniqueId + getFileExtension(originalFileName);
+        Path inputPath = Paths.get(uploadDir, inputFileName).toAbsolutePath();
+
+        String fileType = detectFileType(file.getContentType(), originalFileName);
+        // Videos are always streamed as fragmented MP4, the only container we can write without seeking
+        String outputExtension = "video".equals(fileType) ? ".mp4" : determineOutputExtension(file, outputFormat);
+        String outputFileName = "compressed_" + uniqueId + outputExtension;
+
+        Process process = null;
+        try {
+            file.transferTo(inputPath.toFile());
+            logger.info("File saved successfully to: {}", inputPath);
+
+            long originalSize = Files.size(inputPath);
+            logger.info("Original file size: {} bytes", originalSize);
+
+            List<String> command = buildStreamingCommand(inputPath.toString(), outputExtension.substring(1),
+                    compressionLevel, fileType, maxWidth, maxHeight);
+
+            // stderr is drained separately so stdout carries only the encoded bytes
+            process = new ProcessBuilder(command).start();
+            StringBuilder errorOutput = new StringBuilder();
+            InputStream errorStream = process.getErrorStream();
+            Thread errorReader = new Thread(() -> {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(errorStream))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        errorOutput.append(line).append("\n");
+                    }
+                } catch (IOException e) {
+                    logger.debug("Stopped reading FFmpeg error output for {}", uniqueId, e);
+                }
+            }, "ffmpeg-stderr-" + uniqueId);
+            errorReader.setDaemon(true);
+            errorReader.start();
+
+            StreamingCompression streaming = new StreamingCompression(uniqueId, outputFileName,
+                    getOutputContentType(fileType, outputExtension));
+            FFmpegStdoutStream stdout = new FFmpegStdoutStream(streaming, process, errorReader, errorOutput,
+                    inputPath, originalFileName, originalSize, fileType, startTime);
+            streaming.inputStream = stdout;
+
+            // Most failures (corrupt input, unsupported codec) happen before the first byte;
+            // surface them here so the caller can still answer with a proper error
+            stdout.awaitOutput();
+            return streaming;
+
+        } catch (Exception e) {
+            if (process != null) {
+                process.destroyForcibly();
+            }
+            try {
+                Files.deleteIfExists(inputPath);
+            } catch (Exception cleanupException) {
+                logger.warn("Failed to clean up files after error", cleanupException);
+            }
+            throw e;
+        }
+    }
+
+    public CompressionResponse getStreamStatistics(String streamId) {
+        return streamStatistics.get(streamId);
+    }
+
+    private void runFFmpeg(List<String> command) throws IOException, InterruptedException {
+        // Execute FFmpeg command
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.redirectErrorStream(true);
+        Process process = processBuilder.start();
+
+        // Read output
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line).append("\n");
+            }
+        }
+
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new RuntimeException("File compression failed: " + output.toString());
+        }
+    }
+
+    // Completes each job with true when the shared process encoded it, or false when the
+    // submitting request thread should compress it on its own
+    void runImageBatch(List<ImageBatcher.ImageJob> batch) {
+        boolean batched = false;
+        if (batch.size() > 1) {
+            try {
+                runFFmpeg(buildImageBatchCommand(batch));
+                logger.info("Compressed {} images with one FFmpeg process", batch.size());
+                batched = true;
+            } catch (Exception e) {
+                // One bad input fails the whole process, so each job is retried in parallel on its own thread
+                logger.warn("Batched compression of {} images failed, retrying individually", batch.size(), e);
+            }
+        }
+
+        for (ImageBatcher.ImageJob job : batch) {
+            job.result.complete(batched);
+        }
+    }
+
+    List<String> buildImageBatchCommand(List<ImageBatcher.ImageJob> batch) {
+        List<String> command = new ArrayList<>();
+        command.add(ffmpegPath);
+        command.add("-y");
+
+        for (ImageBatcher.ImageJob job : batch) {
+            command.add("-i");
+            command.add(job.inputPath.toString());
+        }
+
+        // Output options apply to the output that follows them, so each input gets its own mapped output
+        for (int i = 0; i < batch.size(); i++) {
+            ImageBatcher.ImageJob job = batch.get(i);
+            command.add("-map");
+            command.add(i + ":v:0");
+            addImageEncodingOptions(command, job.outputExt, job.compressionLevel, job.maxWidth, job.maxHeight);
+            command.add(job.outputPath.toString());
+        }
+        return command;
+    }
+
     private String detectFileType(String contentType, String fileName) {
         if (contentType != null) {
             if (contentType.startsWith("video/")) return "video";
@@ -189,7 +378,82 @@ public class FFmpegService {
         }
     }
 
+    List<String> buildStreamingCommand(String inputPath, String outputExt, String compressionLevel,
+                                               String fileType, Integer maxWidth, Integer maxHeight) {
+        List<String> command = new ArrayList<>();
+        command.add(ffmpegPath);
+        command.add("-i");
+        command.add(inputPath);
+
+        switch (fileType) {
+            case "video":
+                addVideoEncodingOptions(command, compressionLevel);
+                // Fragmented MP4 puts the moov box first, so it can be written to a pipe
+                command.add("-movflags");
+                command.add("frag_keyframe+empty_moov+default_base_moof");
+                command.add("-f");
+                command.add("mp4");
+                break;
+            case "image":
+                addImageEncodingOptions(command, outputExt, compressionLevel, maxWidth, maxHeight);
+                addImagePipeFormat(command, outputExt);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported file type: " + fileType);
+        }
+
+        command.add("pipe:1");
+        return command;
+    }
+
+    private void addImagePipeFormat(List<String> command, String outputExt) {
+        // Without a file name FFmpeg can't guess the muxer, so name it explicitly
+        switch (outputExt) {
+            case "png":
+                command.add("-frames:v"); command.add("1");
+                command.add("-c:v"); command.add("png");
+                command.add("-f"); command.add("image2pipe");
+                break;
+            case "webp":
+                command.add("-f"); command.add("webp");
+                break;
+            case "avif":
+                // The avif muxer is MP4-based and needs a seekable output
+                throw new IllegalArgumentException("AVIF output can't be streamed");
+            case "jpg":
+            case "jpeg":
+            default:
+                command.add("-frames:v"); command.add("1");
+                command.add("-c:v"); command.add("mjpeg");
+                command.add("-f"); command.add("image2pipe");
+                break;
+        }
+    }
+
+    private String getOutputContentType(String fileType, String outputExtension) {
+        if ("video".equals(fileType)) {
+            return "video/mp4";
+        }
+        switch (outputExtension) {
+            case ".png":
+                return "image/png";
+            case ".webp":
+                return "image/webp";
+            case ".jpg":
+            default:
+                return "image/jpeg";
+        }
+    }
+
     private List<String> buildVideoCommand(List<String> command, String outputPath, String compressionLevel) {
+        addVideoEncodingOptions(command, compressionLevel);
+
+        command.add("-y");
+        command.add(outputPath);
+        return command;
+    }
+
+    private void addVideoEncodingOptions(List<String> command, String compressionLevel) {
         command.add("-c:v");
         command.add("libx264");
         command.add("-an"); // Remove audio stream
@@ -209,14 +473,21 @@ public class FFmpegService {
                 command.add("-preset"); command.add("medium");
                 break;
         }
+    }
+
+    private List<String> buildImageCommand(List<String> command, String outputPath, String compressionLevel,
+                                           Integer maxWidth, Integer maxHeight) {
+        // Determine output format and quality based on file extension
+        String outputExt = outputPath.substring(outputPath.lastIndexOf('.') + 1).toLowerCase();
+        addImageEncodingOptions(command, outputExt, compressionLevel, maxWidth, maxHeight);
 
         command.add("-y");
         command.add(outputPath);
         return command;
     }
 
-    private List<String> buildImageCommand(List<String> command, String outputPath, String compressionLevel,
-                                           Integer maxWidth, Integer maxHeight) {
+    private void addImageEncodingOptions(List<String> command, String outputExt, String compressionLevel,
+                                         Integer maxWidth, Integer maxHeight) {
         // Add scaling if dimensions are specified
         if (maxWidth != null || maxHeight != null) {
             command.add("-vf");
@@ -231,9 +502,6 @@ public class FFmpegService {
             command.add(scaleFilter);
         }
 
-        // Determine output format and quality based on file extension
-        String outputExt = outputPath.substring(outputPath.lastIndexOf('.') + 1).toLowerCase();
-
         switch (outputExt) {
             case "jpg":
             case "jpeg":
@@ -300,10 +568,6 @@ public class FFmpegService {
                 }
                 break;
         }
-
-        command.add("-y");
-        command.add(outputPath);
-        return command;
     }
 
     private void createDirectories() throws IOException {
@@ -341,4 +605,176 @@ public class FFmpegService {
         logger.info("Looking for file: {}, exists: {}", filePath.toAbsolutePath(), file.exists());
         return file.exists() ? file : null;
     }
-}
\ No newline at end of file
+
+    /**
+     * Closing before the output has been fully read kills FFmpeg and removes the input file.
+     */
+    public static class StreamingCompression implements Closeable {
+        private final String id;
+        private final String fileName;
+        private final String contentType;
+        private InputStream inputStream;
+
+        private StreamingCompression(String id, String fileName, String contentType) {
+            this.id = id;
+            this.fileName = fileName;
+            this.contentType = contentType;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public InputStream getInputStream() {
+            return inputStream;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (inputStream != null) {
+                inputStream.close();
+            }
+        }
+    }
+
+    /**
+     * FFmpeg's stdout. Counts the bytes handed to the client and, once the process has
+     * exited, records the statistics and removes the input file. A non-zero exit code is
+     * reported as an IOException at end of stream so the response is aborted.
+     */
+    private class FFmpegStdoutStream extends FilterInputStream {
+        private final StreamingCompression streaming;
+        private final Process process;
+        private final Thread errorReader;
+        private final StringBuilder errorOutput;
+        private final Path inputPath;
+        private final String originalFileName;
+        private final long originalSize;
+        private final String fileType;
+        private final long startTime;
+        private long compressedSize;
+        private boolean finished;
+
+        FFmpegStdoutStream(StreamingCompression streaming, Process process, Thread errorReader,
+                               StringBuilder errorOutput, Path inputPath, String originalFileName,
+                               long originalSize, String fileType, long startTime) {
+            super(new BufferedInputStream(process.getInputStream()));
+            this.streaming = streaming;
+            this.process = process;
+            this.errorReader = errorReader;
+            this.errorOutput = errorOutput;
+            this.inputPath = inputPath;
+            this.originalFileName = originalFileName;
+            this.originalSize = originalSize;
+            this.fileType = fileType;
+            this.startTime = startTime;
+        }
+
+        void awaitOutput() throws IOException {
+            in.mark(1);
+            if (in.read() != -1) {
+                in.reset();
+                return;
+            }
+
+            // finish() throws with FFmpeg's error output on a non-zero exit
+            finish();
+            complete(false);
+            throw new IOException("FFmpeg completed but produced no output");
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                finish();
+            } else {
+                compressedSize++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n == -1) {
+                finish();
+            } else {
+                compressedSize += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!finished) {
+                    // Client went away before the end of the output
+                    finished = true;
+                    process.destroyForcibly();
+                    logger.warn("Streaming compression {} aborted after {} bytes", streaming.getId(), compressedSize);
+                    complete(false);
+                }
+            }
+        }
+
+        private void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+
+            int exitCode;
+            try {
+                exitCode = process.waitFor();
+                errorReader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                process.destroyForcibly();
+                complete(false);
+                throw new IOException("Interrupted while waiting for FFmpeg", e);
+            }
+
+            complete(exitCode == 0);
+            if (exitCode != 0) {
+                throw new IOException("File compression failed: " + errorOutput);
+            }
+            logger.info("Streaming compression completed. Original: {} bytes, Compressed: {} bytes",
+                    originalSize, compressedSize);
+        }
+
+        private void complete(boolean success) {
+            try {
+                Files.deleteIfExists(inputPath);
+                logger.info("Cleaned up input file: {}", inputPath);
+            } catch (Exception e) {
+                logger.warn("Failed to clean up input file: {}", inputPath, e);
+            }
+
+            double compressionRatio = (double) compressedSize / originalSize;
+            double spaceSavedPercentage = ((double) (originalSize - compressedSize) / originalSize) * 100;
+
+            streamStatistics.put(streaming.getId(), CompressionResponse.builder()
+                    .success(success)
+                    .originalFileName(originalFileName)
+                    .compressedFileName(streaming.getFileName())
+                    .originalSize(originalSize)
+                    .compressedSize(compressedSize)
+                    .compressionRatio(compressionRatio)
+                    .spaceSavedPercentage(spaceSavedPercentage)
+                    .processingTimeMs(System.currentTimeMillis() - startTime)
+                    .fileType(fileType)
+                    .build());
+        }
+    }
+}
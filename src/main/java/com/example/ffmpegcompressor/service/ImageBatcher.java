@@ -0,0 +1,166 @@
+package com.example.ffmpegcompressor.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects image jobs with the same encoding settings for up to {@code windowMs}
+ * (or until {@code maxBatchSize} are waiting) and hands them to the runner as one batch,
+ * so a single FFmpeg process can encode all of them.
+ */
+class ImageBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageBatcher.class);
+
+    interface BatchRunner {
+        // Must complete every job's future (true if the job was encoded by the batch, false if the
+        // submitter should encode it alone); anything left open fails with the thrown exception
+        void run(List<ImageJob> batch) throws Exception;
+    }
+
+    static class ImageJob {
+        final Path inputPath;
+        final Path outputPath;
+        final String compressionLevel;
+        final String outputExt;
+        final Integer maxWidth;
+        final Integer maxHeight;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        ImageJob(Path inputPath, Path outputPath, String compressionLevel, String outputExt,
+                 Integer maxWidth, Integer maxHeight) {
+            this.inputPath = inputPath;
+            this.outputPath = outputPath;
+            this.compressionLevel = compressionLevel.toLowerCase();
+            this.outputExt = outputExt;
+            this.maxWidth = maxWidth;
+            this.maxHeight = maxHeight;
+        }
+
+        // Jobs with the same key produce identical FFmpeg output options
+        String batchKey() {
+            return compressionLevel + "|" + outputExt + "|" + maxWidth + "|" + maxHeight;
+        }
+    }
+
+    private static class PendingBatch {
+        final List<ImageJob> jobs = new ArrayList<>();
+        ScheduledFuture<?> timer;
+    }
+
+    private final long windowMs;
+    private final int maxBatchSize;
+    private final BatchRunner runner;
+    private final Map<String, PendingBatch> pending = new HashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService workers;
+
+    ImageBatcher(long windowMs, int maxBatchSize, BatchRunner runner) {
+        this.windowMs = windowMs;
+        this.maxBatchSize = maxBatchSize;
+        this.runner = runner;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("image-batch-timer"));
+        this.workers = Executors.newCachedThreadPool(daemonThreads("image-batch-worker"));
+    }
+
+    CompletableFuture<Boolean> submit(ImageJob job) {
+        String key = job.batchKey();
+        List<ImageJob> ready = null;
+
+        synchronized (pending) {
+            PendingBatch batch = pending.get(key);
+            if (batch == null) {
+                PendingBatch newBatch = new PendingBatch();
+                newBatch.timer = scheduler.schedule(() -> flush(key, newBatch), windowMs, TimeUnit.MILLISECONDS);
+                pending.put(key, newBatch);
+                batch = newBatch;
+            }
+            batch.jobs.add(job);
+
+            if (batch.jobs.size() >= maxBatchSize) {
+                batch.timer.cancel(false);
+                pending.remove(key);
+                ready = batch.jobs;
+            }
+        }
+
+        if (ready != null) {
+            dispatch(ready);
+        }
+        return job.result;
+    }
+
+    void shutdown() {
+        scheduler.shutdownNow();
+        workers.shutdown();
+
+        synchronized (pending) {
+            for (PendingBatch batch : pending.values()) {
+                for (ImageJob job : batch.jobs) {
+                    job.result.completeExceptionally(new IllegalStateException("Image batcher is shutting down"));
+                }
+            }
+            pending.clear();
+        }
+    }
+
+    private void flush(String key, PendingBatch batch) {
+        synchronized (pending) {
+            // Already dispatched because it filled up
+            if (pending.get(key) != batch) {
+                return;
+            }
+            pending.remove(key);
+        }
+        dispatch(batch.jobs);
+    }
+
+    private void dispatch(List<ImageJob> batch) {
+        logger.debug("Dispatching image batch of {} job(s)", batch.size());
+        try {
+            workers.execute(() -> {
+                try {
+                    runner.run(batch);
+                } catch (Exception e) {
+                    logger.error("Image batch failed", e);
+                    for (ImageJob job : batch) {
+                        job.result.completeExceptionally(e);
+                    }
+                }
+                for (ImageJob job : batch) {
+                    job.result.completeExceptionally(new IllegalStateException("Batch runner did not complete job"));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Every submitter is waiting on its future, not just the one that filled the batch
+            logger.warn("Image batch of {} job(s) rejected", batch.size(), e);
+            for (ImageJob job : batch) {
+                job.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
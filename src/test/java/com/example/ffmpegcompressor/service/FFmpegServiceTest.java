@@ -1,8 +1,33 @@
 package com.example.ffmpegcompressor.service;
 
+import com.example.ffmpegcompressor.dto.CompressionResponse;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
 @TestPropertySource(properties = {
@@ -12,9 +37,215 @@ import org.springframework.test.context.TestPropertySource;
 })
 class FFmpegServiceTest {
 
+    @Autowired
+    private FFmpegService ffmpegService;
+
     @Test
     void testServiceInitialization() {
         // Basic test to ensure service can be initialized
         // Add more comprehensive tests as needed
     }
+
+    @Test
+    void testStreamingVideoCommandUsesFragmentedMp4() {
+        List<String> command = ffmpegService.buildStreamingCommand("in.mov", "mp4", "medium", "video", null, null);
+
+        assertEquals(Arrays.asList("ffmpeg", "-i", "in.mov",
+                "-c:v", "libx264", "-an", "-crf", "23", "-preset", "medium",
+                "-movflags", "frag_keyframe+empty_moov+default_base_moof", "-f", "mp4",
+                "pipe:1"), command);
+    }
+
+    @Test
+    void testStreamingJpegCommand() {
+        List<String> command = ffmpegService.buildStreamingCommand("in.png", "jpg", "high", "image", 640, null);
+
+        assertEquals(Arrays.asList("ffmpeg", "-i", "in.png",
+                "-vf", "scale=640:-1", "-q:v", "2",
+                "-frames:v", "1", "-c:v", "mjpeg", "-f", "image2pipe",
+                "pipe:1"), command);
+    }
+
+    @Test
+    void testStreamingPngCommand() {
+        List<String> command = ffmpegService.buildStreamingCommand("in.jpg", "png", "low", "image", null, null);
+
+        assertEquals(Arrays.asList("ffmpeg", "-i", "in.jpg",
+                "-compression_level", "1",
+                "-frames:v", "1", "-c:v", "png", "-f", "image2pipe",
+                "pipe:1"), command);
+    }
+
+    @Test
+    void testStreamingWebpCommand() {
+        List<String> command = ffmpegService.buildStreamingCommand("in.jpg", "webp", "medium", "image", null, null);
+
+        assertEquals(Arrays.asList("ffmpeg", "-i", "in.jpg",
+                "-quality", "75", "-f", "webp",
+                "pipe:1"), command);
+    }
+
+    @Test
+    void testStreamingAvifIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> ffmpegService.buildStreamingCommand("in.jpg", "avif", "medium", "image", null, null));
+    }
+
+    @Test
+    void testImageBatchCommandMapsEachInputToItsOwnOutput() {
+        List<ImageBatcher.ImageJob> batch = Arrays.asList(
+                new ImageBatcher.ImageJob(Paths.get("in_a.png"), Paths.get("out_a.webp"), "medium", "webp", 640, 480),
+                new ImageBatcher.ImageJob(Paths.get("in_b.png"), Paths.get("out_b.webp"), "medium", "webp", 640, 480));
+
+        List<String> command = ffmpegService.buildImageBatchCommand(batch);
+
+        assertEquals(Arrays.asList("ffmpeg", "-y", "-i", "in_a.png", "-i", "in_b.png",
+                "-map", "0:v:0", "-vf", "scale=640:480:force_original_aspect_ratio=decrease", "-quality", "75", "out_a.webp",
+                "-map", "1:v:0", "-vf", "scale=640:480:force_original_aspect_ratio=decrease", "-quality", "75", "out_b.webp"),
+                command);
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void testFailedImageBatchIsRetriedPerJob(@TempDir Path tempDir) throws Exception {
+        // Fails whenever it gets more than one input, or an input containing "corrupt"
+        Path calls = tempDir.resolve("calls.log");
+        FFmpegService service = newService(tempDir, writeFakeFfmpeg(tempDir,
+                "echo \"$*\" >> " + calls,
+                "inputs=0",
+                "for arg in \"$@\"; do",
+                "  [ \"$prev\" = \"-i\" ] && inputs=$((inputs + 1)) && grep -q corrupt \"$arg\" && exit 1",
+                "  prev=$arg; out=$arg",
+                "done",
+                "[ $inputs -gt 1 ] && exit 1",
+                "printf 'xx' > \"$out\""));
+        ReflectionTestUtils.setField(service, "imageBatchWindowMs", 60_000L);
+        ReflectionTestUtils.setField(service, "imageBatchMaxSize", 2);
+        service.initImageBatcher();
+
+        ExecutorService requests = Executors.newFixedThreadPool(2);
+        try {
+            Future<CompressionResponse> good = requests.submit(() -> service.compressFile(
+                    new MockMultipartFile("file", "good.png", "image/png", "fine".getBytes()), "medium", "jpg", null, null));
+            Future<CompressionResponse> bad = requests.submit(() -> service.compressFile(
+                    new MockMultipartFile("file", "bad.png", "image/png", "corrupt".getBytes()), "medium", "jpg", null, null));
+
+            assertEquals(2, good.get(10, TimeUnit.SECONDS).getCompressedSize());
+            ExecutionException e = assertThrows(ExecutionException.class, () -> bad.get(10, TimeUnit.SECONDS));
+            assertTrue(e.getCause().getMessage().startsWith("File compression failed"));
+        } finally {
+            requests.shutdownNow();
+            service.shutdownImageBatcher();
+        }
+
+        // One shared run with both inputs, then one run per job
+        List<String> invocations = Files.readAllLines(calls);
+        assertEquals(3, invocations.size());
+        assertEquals(2, Collections.frequency(Arrays.asList(invocations.get(0).split(" ")), "-i"));
+        assertEquals(1, Collections.frequency(Arrays.asList(invocations.get(1).split(" ")), "-i"));
+        assertEquals(1, Collections.frequency(Arrays.asList(invocations.get(2).split(" ")), "-i"));
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void testStreamingFailsBeforeOutputWithFFmpegError(@TempDir Path tempDir) throws Exception {
+        FFmpegService service = newService(tempDir, writeFakeFfmpeg(tempDir,
+                "echo 'Invalid data found when processing input' >&2",
+                "exit 1"));
+
+        IOException e = assertThrows(IOException.class, () -> service.startStreamingCompression(
+                imageUpload(), "medium", "png", null, null));
+
+        assertTrue(e.getMessage().contains("Invalid data found when processing input"));
+        assertUploadsEmpty(tempDir);
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void testStreamingFailureAfterOutputAbortsAtEndOfStream(@TempDir Path tempDir) throws Exception {
+        FFmpegService service = newService(tempDir, writeFakeFfmpeg(tempDir,
+                "printf 'abc'",
+                "echo 'Conversion failed' >&2",
+                "exit 1"));
+
+        FFmpegService.StreamingCompression streaming = service.startStreamingCompression(
+                imageUpload(), "medium", "png", null, null);
+        try (InputStream in = streaming.getInputStream()) {
+            IOException e = assertThrows(IOException.class, () -> in.readAllBytes());
+            assertTrue(e.getMessage().contains("Conversion failed"));
+        }
+
+        CompressionResponse statistics = service.getStreamStatistics(streaming.getId());
+        assertFalse(statistics.isSuccess());
+        assertEquals(3, statistics.getCompressedSize());
+        assertUploadsEmpty(tempDir);
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void testStreamingRecordsStatisticsAfterFullRead(@TempDir Path tempDir) throws Exception {
+        FFmpegService service = newService(tempDir, writeFakeFfmpeg(tempDir, "printf 'abcdef'"));
+
+        FFmpegService.StreamingCompression streaming = service.startStreamingCompression(
+                imageUpload(), "medium", "png", null, null);
+        assertEquals("image/png", streaming.getContentType());
+        assertNull(service.getStreamStatistics(streaming.getId()));
+        try (InputStream in = streaming.getInputStream()) {
+            assertEquals("abcdef", new String(in.readAllBytes()));
+        }
+
+        CompressionResponse statistics = service.getStreamStatistics(streaming.getId());
+        assertTrue(statistics.isSuccess());
+        assertEquals(10, statistics.getOriginalSize());
+        assertEquals(6, statistics.getCompressedSize());
+        assertEquals(streaming.getFileName(), statistics.getCompressedFileName());
+        assertUploadsEmpty(tempDir);
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void testClosingStreamEarlyKillsFFmpeg(@TempDir Path tempDir) throws Exception {
+        FFmpegService service = newService(tempDir, writeFakeFfmpeg(tempDir,
+                "printf 'abc'",
+                "exec sleep 30"));
+
+        FFmpegService.StreamingCompression streaming = service.startStreamingCompression(
+                imageUpload(), "medium", "png", null, null);
+        Process process = (Process) ReflectionTestUtils.getField(streaming.getInputStream(), "process");
+        assertEquals('a', streaming.getInputStream().read());
+
+        streaming.close();
+
+        assertTrue(process.waitFor(5, TimeUnit.SECONDS));
+        assertFalse(service.getStreamStatistics(streaming.getId()).isSuccess());
+        assertUploadsEmpty(tempDir);
+    }
+
+    private static MockMultipartFile imageUpload() {
+        return new MockMultipartFile("file", "photo.png", "image/png", "0123456789".getBytes());
+    }
+
+    private static void assertUploadsEmpty(Path dir) throws IOException {
+        try (Stream<Path> uploads = Files.list(dir.resolve("uploads"))) {
+            assertEquals(0, uploads.count());
+        }
+    }
+
+    private static Path writeFakeFfmpeg(Path dir, String... script) throws Exception {
+        Path fakeFfmpeg = dir.resolve("ffmpeg");
+        List<String> lines = new ArrayList<>();
+        lines.add("#!/bin/sh");
+        lines.addAll(Arrays.asList(script));
+        Files.write(fakeFfmpeg, lines);
+        assertTrue(fakeFfmpeg.toFile().setExecutable(true));
+        return fakeFfmpeg;
+    }
+
+    private static FFmpegService newService(Path dir, Path ffmpeg) {
+        FFmpegService service = new FFmpegService();
+        ReflectionTestUtils.setField(service, "uploadDir", dir.resolve("uploads").toString());
+        ReflectionTestUtils.setField(service, "outputDir", dir.resolve("compressed").toString());
+        ReflectionTestUtils.setField(service, "ffmpegPath", ffmpeg.toString());
+        return service;
+    }
 }
@@ -0,0 +1,92 @@
+package com.example.ffmpegcompressor.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageBatcherTest {
+
+    private final List<List<ImageBatcher.ImageJob>> batches = new CopyOnWriteArrayList<>();
+    private ImageBatcher batcher;
+
+    @AfterEach
+    void tearDown() {
+        if (batcher != null) {
+            batcher.shutdown();
+        }
+    }
+
+    @Test
+    void compatibleJobsShareABatch() throws Exception {
+        batcher = new ImageBatcher(100, 8, this::completeAll);
+
+        CompletableFuture<Boolean> first = batcher.submit(job("a", "medium", "jpg"));
+        CompletableFuture<Boolean> second = batcher.submit(job("b", "MEDIUM", "jpg"));
+        CompletableFuture<Boolean> other = batcher.submit(job("c", "high", "jpg"));
+
+        CompletableFuture.allOf(first, second, other).get(5, TimeUnit.SECONDS);
+        assertEquals(2, batches.size());
+        assertTrue(batches.stream().anyMatch(batch -> batch.size() == 2));
+    }
+
+    @Test
+    void fullBatchIsDispatchedBeforeTheWindowEnds() throws Exception {
+        batcher = new ImageBatcher(60_000, 2, this::completeAll);
+
+        CompletableFuture<Boolean> first = batcher.submit(job("a", "low", "png"));
+        CompletableFuture<Boolean> second = batcher.submit(job("b", "low", "png"));
+
+        CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS);
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.get(0).size());
+    }
+
+    @Test
+    void runnerFailureFailsEveryJob() {
+        batcher = new ImageBatcher(10, 8, batch -> {
+            throw new IllegalStateException("ffmpeg exploded");
+        });
+
+        CompletableFuture<Boolean> future = batcher.submit(job("a", "medium", "webp"));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertEquals("ffmpeg exploded", e.getCause().getMessage());
+    }
+
+    @Test
+    void rejectedBatchFailsEveryJob() {
+        batcher = new ImageBatcher(60_000, 2, this::completeAll);
+
+        CompletableFuture<Boolean> first = batcher.submit(job("a", "medium", "jpg"));
+        // Stops the workers but leaves the pending batch to be filled by the next job
+        ((ExecutorService) ReflectionTestUtils.getField(batcher, "workers")).shutdown();
+        CompletableFuture<Boolean> second = batcher.submit(job("b", "medium", "jpg"));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+    }
+
+    private void completeAll(List<ImageBatcher.ImageJob> batch) {
+        batches.add(batch);
+        for (ImageBatcher.ImageJob job : batch) {
+            job.result.complete(true);
+        }
+    }
+
+    private static ImageBatcher.ImageJob job(String name, String level, String ext) {
+        return new ImageBatcher.ImageJob(Paths.get("input_" + name), Paths.get("compressed_" + name + "." + ext),
+                level, ext, null, null);
+    }
+}